@@ -19,4 +19,10 @@ dependencies {
     annotationProcessor("com.velocitypowered:velocity-api:3.1.1")
 
     implementation("net.kyori:adventure-text-minimessage:4.12.0")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.9.2")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
\ No newline at end of file
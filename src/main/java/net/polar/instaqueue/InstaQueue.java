@@ -2,19 +2,23 @@ package net.polar.instaqueue;
 
 
 import com.google.inject.Inject;
-import com.moandjiezana.toml.Toml;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.scheduler.Scheduler;
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.polar.instaqueue.commands.InstaQueueCommand;
+import net.polar.instaqueue.config.ConfigWatcher;
+import net.polar.instaqueue.config.QueueConfig;
 import net.polar.instaqueue.listeners.MiscListener;
 import net.polar.instaqueue.player.QueuedPlayer;
 import net.polar.instaqueue.types.Queue;
 import net.polar.instaqueue.types.SubQueue;
+import net.polar.instaqueue.utils.Messenger;
 import net.polar.instaqueue.utils.Priority;
 import org.slf4j.Logger;
 
@@ -24,6 +28,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Plugin(
         id = "instaqueue",
@@ -37,22 +43,20 @@ public class InstaQueue {
     public static final MiniMessage MINI_MESSAGE = MiniMessage.miniMessage();
     private final ProxyServer server;
     private final Logger logger;
-    private final Toml config;
+    private final File configFile;
+    private final Messenger messenger;
 
-    private final String connectTo;
-    private final String toConnect;
-    private final Duration timeBetweenUpdates;
-    private final Duration timeBetweenMessages;
+    private volatile QueueConfig config;
+    private ConfigWatcher configWatcher;
 
-    private final List<Priority> priorities = new ArrayList<>();
-    private final List<SubQueue> subQueues = new ArrayList<>();
-    private final Map<UUID, QueuedPlayer> queuedPlayers = new HashMap<>();
+    private final Map<UUID, QueuedPlayer> queuedPlayers = new ConcurrentHashMap<>();
     private Queue queue;
 
     @Inject
     public InstaQueue(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
         this.server = server;
         this.logger = logger;
+        this.messenger = new Messenger(logger);
         File configFile = new File(dataDirectory.toFile(), "config.toml");
         if (!configFile.exists()) {
             try {
@@ -63,22 +67,10 @@ public class InstaQueue {
                 e.printStackTrace();
             }
         }
-        this.config = new Toml().read(configFile);
-        this.connectTo = config.getString("join-server");
-        this.toConnect = config.getString("first-queue");
-        Toml intervals  = config.getTable("intervals");
-        this.timeBetweenUpdates = Duration.ofSeconds(intervals.getLong("update"));
-        this.timeBetweenMessages = Duration.ofSeconds(intervals.getLong("message"));
-
-        Toml priorities = config.getTable("priorities");
-        priorities.entrySet().forEach((entry) -> {
-            int weight = Integer.parseInt(entry.getKey());
-            String name = entry.getValue().toString();
-            this.priorities.add(new Priority(name, weight));
-            logger.info("Registered priority: " + name + " with weight: " + weight);
-        });
-        this.priorities.forEach(priority -> {
-            this.subQueues.add(new SubQueue(priority.name(), priority.getWeight()));
+        this.configFile = configFile;
+        this.config = QueueConfig.read(configFile);
+        this.config.priorities().forEach(priority -> {
+            logger.info("Registered priority: " + priority.name() + " with weight: " + priority.getWeight());
             logger.info("Registered subqueue: " + priority.name() + " with weight: " + priority.getWeight());
         });
     }
@@ -86,10 +78,64 @@ public class InstaQueue {
     @Subscribe
     public void onProxyInitialization(ProxyInitializeEvent event) {
         instance = this;
-        queue = new Queue(server.getServer(toConnect).get());
+        queue = new Queue(server.getServer(config.toConnect()).get());
         registerListeners(MiscListener.INSTANCE);
+        server.getCommandManager().register(server.getCommandManager().metaBuilder("instaqueue").aliases("iq").build(), new InstaQueueCommand());
         buildTask(() -> queue.sendNext()).repeat(Duration.ofMillis(100)).schedule();
         buildTask(() -> queue.refreshMaxPlayers()).repeat(Duration.ofSeconds(10)).schedule();
+        updateWatcher();
+    }
+
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (configWatcher != null) configWatcher.close();
+        messenger.close();
+    }
+
+    /**
+     * Re-reads config.toml off-thread and swaps it in, migrating every queued player into the new tier layout.
+     * The previous config is kept if the file fails to parse or has invalid settings.
+     * @return A future completed with the new config once it has been applied.
+     */
+    public CompletableFuture<QueueConfig> reload() {
+        CompletableFuture<QueueConfig> future = new CompletableFuture<>();
+        buildTask(() -> {
+            try {
+                QueueConfig next = QueueConfig.read(configFile);
+                apply(next);
+                future.complete(next);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }).schedule();
+        return future;
+    }
+
+    private synchronized void apply(QueueConfig next) {
+        if (!next.toConnect().equalsIgnoreCase(config.toConnect()))
+            logger.warn("first-queue was changed to " + next.toConnect() + ", this requires a restart to take effect.");
+
+        // Only applied once the queue has migrated, a reload that throws leaves both the config and the queue as they were.
+        if (queue != null) queue.reload(next);
+        this.config = next;
+        // Queued players had their priority recalculated during the migration, under the queue's lock.
+        queuedPlayers.values().stream().filter(player -> player.queue() == null).forEach(QueuedPlayer::recalculatePriority);
+        updateWatcher();
+        logger.info("Reloaded config with " + next.priorities().size() + " priorities.");
+    }
+
+    private synchronized void updateWatcher() {
+        if (config.watch() && configWatcher == null) {
+            try {
+                configWatcher = new ConfigWatcher(configFile.toPath());
+                configWatcher.start();
+            } catch (IOException e) {
+                logger.error("Unable to watch config.toml for changes.", e);
+            }
+        } else if (!config.watch() && configWatcher != null) {
+            configWatcher.close();
+            configWatcher = null;
+        }
     }
 
     public Scheduler.TaskBuilder buildTask(Runnable runnable) {
@@ -97,30 +143,27 @@ public class InstaQueue {
     }
 
     public List<SubQueue> newSubQueues() {
-        List<SubQueue> newSubQueues = new ArrayList<>();
-        for (SubQueue subQueue : this.subQueues)
-            newSubQueues.add(new SubQueue(subQueue.name(), subQueue.getWeight()));
-        Collections.sort(newSubQueues);
-        return newSubQueues;
+        return config.newSubQueues();
     }
 
     public static InstaQueue getInstance() {return instance;}
     public ProxyServer getServer() {return server;}
     public Logger getLogger() {return logger;}
-    public Toml getConfig() {return config;}
-    public String getConnectTo() {return connectTo;}
+    public Messenger getMessenger() {return messenger;}
+    public QueueConfig getConfig() {return config;}
+    public String getConnectTo() {return config.connectTo();}
 
     public List<Priority> getPriorities() {
-        return priorities;
+        return config.priorities();
     }
 
 
     public Duration getTimeBetweenUpdates() {
-        return timeBetweenUpdates;
+        return config.timeBetweenUpdates();
     }
 
     public Duration getTimeBetweenMessages() {
-        return timeBetweenMessages;
+        return config.timeBetweenMessages();
     }
 
     public Queue getQueue() {return queue;}
@@ -131,7 +174,11 @@ public class InstaQueue {
     }
 
     public void removeQueued(Player player) {
-        queuedPlayers.remove(player.getUniqueId());
+        removeQueued(player.getUniqueId());
+    }
+
+    public void removeQueued(UUID uuid) {
+        queuedPlayers.remove(uuid);
     }
 
     private void registerListeners(Object... listeners) {
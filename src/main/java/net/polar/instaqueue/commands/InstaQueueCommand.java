@@ -0,0 +1,102 @@
+package net.polar.instaqueue.commands;
+
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.polar.instaqueue.InstaQueue;
+import net.polar.instaqueue.types.Queue;
+import net.polar.instaqueue.types.QueueSnapshot;
+
+import java.util.List;
+import java.util.Locale;
+
+public final class InstaQueueCommand implements SimpleCommand {
+
+    private static final String PERMISSION = "instaqueue.admin";
+    private static final List<String> SUBCOMMANDS = List.of("info", "list", "reload");
+    private static final int PAGE_SIZE = 50;
+
+    @Override
+    public void execute(Invocation invocation) {
+        final CommandSource source = invocation.source();
+        final String[] args = invocation.arguments();
+
+        if (args.length == 0) {
+            sendUsage(source);
+            return;
+        }
+
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "info" -> info(source);
+            case "list" -> list(source, args);
+            case "reload" -> reload(source);
+            default -> sendUsage(source);
+        }
+    }
+
+    // Both info and list read the published snapshot, so they never contend with dispatch.
+    private void info(CommandSource source) {
+        final Queue queue = InstaQueue.getInstance().getQueue();
+        final QueueSnapshot snapshot = queue.snapshot();
+
+        source.sendMessage(Component.text(queue.getServerFormatted() + " queue: " + snapshot.size() + " players, head waiting " + snapshot.headWait().toSeconds() + "s", NamedTextColor.GOLD));
+        snapshot.tierSizes().forEach((name, size) -> source.sendMessage(Component.text(" - " + name + ": " + size, NamedTextColor.GRAY)));
+    }
+
+    private void list(CommandSource source, String[] args) {
+        final QueueSnapshot snapshot = InstaQueue.getInstance().getQueue().snapshot();
+
+        int page = 1;
+        if (args.length > 1) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                source.sendMessage(Component.text("Invalid page: " + args[1], NamedTextColor.RED));
+                return;
+            }
+        }
+
+        final int pages = Math.max(1, snapshot.pages(PAGE_SIZE));
+        if (page < 1 || page > pages) {
+            source.sendMessage(Component.text("Page must be between 1 and " + pages + ".", NamedTextColor.RED));
+            return;
+        }
+
+        source.sendMessage(Component.text("Queued players (page " + page + "/" + pages + "):", NamedTextColor.GOLD));
+        for (QueueSnapshot.Entry entry : snapshot.page(page - 1, PAGE_SIZE))
+            source.sendMessage(Component.text(" #" + (entry.position() + 1) + " " + entry.name() + " (" + entry.subQueue() + ")" + (entry.suspended() ? " [away]" : ""), NamedTextColor.GRAY));
+    }
+
+    private void reload(CommandSource source) {
+        source.sendMessage(Component.text("Reloading InstaQueue config...", NamedTextColor.GRAY));
+        InstaQueue.getInstance().reload().whenComplete((config, e) -> {
+            if (e != null) {
+                InstaQueue.getInstance().getLogger().error("Failed to reload config.toml, keeping the previous config.", e);
+                source.sendMessage(Component.text("Failed to reload the config, check the console for details.", NamedTextColor.RED));
+                return;
+            }
+            source.sendMessage(Component.text("Reloaded the config with " + config.priorities().size() + " priorities.", NamedTextColor.GREEN));
+        });
+    }
+
+    private void sendUsage(CommandSource source) {
+        source.sendMessage(Component.text("Usage: /instaqueue <info|list [page]|reload>", NamedTextColor.RED));
+    }
+
+    @Override
+    public List<String> suggest(Invocation invocation) {
+        final String[] args = invocation.arguments();
+        if (args.length > 1)
+            return List.of();
+
+        final String prefix = args.length == 0 ? "" : args[0].toLowerCase(Locale.ROOT);
+        return SUBCOMMANDS.stream().filter(subcommand -> subcommand.startsWith(prefix)).toList();
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission(PERMISSION);
+    }
+
+}
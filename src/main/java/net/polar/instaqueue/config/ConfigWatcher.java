@@ -0,0 +1,83 @@
+package net.polar.instaqueue.config;
+
+import net.polar.instaqueue.InstaQueue;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the data directory and triggers a reload whenever config.toml is written to.
+ */
+public final class ConfigWatcher implements Runnable, AutoCloseable {
+
+    // Editors tend to emit several events per save, wait for them to settle before reloading.
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path configFile;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public ConfigWatcher(@NotNull Path configFile) throws IOException {
+        this.configFile = configFile;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        configFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this, "InstaQueue Config Watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = touchesConfig(key);
+                key.reset();
+                if (!changed) continue;
+
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey settled;
+                while ((settled = watchService.poll()) != null) {
+                    settled.pollEvents();
+                    settled.reset();
+                }
+
+                InstaQueue.getInstance().reload().exceptionally(e -> {
+                    InstaQueue.getInstance().getLogger().error("Failed to reload config.toml, keeping the previous config.", e);
+                    return null;
+                });
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Shutting down
+        }
+    }
+
+    private boolean touchesConfig(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path path && path.equals(configFile.getFileName()))
+                changed = true;
+        }
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        thread.interrupt();
+    }
+
+}
@@ -0,0 +1,140 @@
+package net.polar.instaqueue.config;
+
+import com.moandjiezana.toml.Toml;
+import net.polar.instaqueue.types.SubQueue;
+import net.polar.instaqueue.utils.Priority;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of config.toml. A new snapshot is parsed on every reload and swapped in as a whole,
+ * so readers never observe a half applied config.
+ */
+public final class QueueConfig {
+
+    private final String connectTo;
+    private final String toConnect;
+    private final String queueMessage;
+    private final String positionMessage;
+    private final Duration timeBetweenUpdates;
+    private final Duration timeBetweenMessages;
+    private final Duration reconnectGrace;
+    private final boolean watch;
+    private final List<Priority> priorities;
+
+    private QueueConfig(Toml config) {
+        this.connectTo = requireString(config, "join-server");
+        this.toConnect = requireString(config, "first-queue");
+        this.queueMessage = requireString(config, "queue-message");
+        this.positionMessage = requireString(config, "position-message");
+        this.watch = config.getBoolean("watch-config", false);
+
+        Toml intervals = requireTable(config, "intervals");
+        this.timeBetweenUpdates = Duration.ofSeconds(intervals.getLong("update", 0L));
+        this.timeBetweenMessages = Duration.ofSeconds(intervals.getLong("message", 0L));
+        this.reconnectGrace = Duration.ofSeconds(intervals.getLong("reconnect-grace", 0L));
+        if (timeBetweenUpdates.isZero() || timeBetweenUpdates.isNegative())
+            throw new IllegalStateException("intervals.update must be a positive number of seconds.");
+        if (timeBetweenMessages.isZero() || timeBetweenMessages.isNegative())
+            throw new IllegalStateException("intervals.message must be a positive number of seconds.");
+        if (reconnectGrace.isNegative())
+            throw new IllegalStateException("intervals.reconnect-grace can't be negative.");
+
+        List<Priority> priorities = new ArrayList<>();
+        requireTable(config, "priorities").entrySet().forEach((entry) -> {
+            int weight;
+            try {
+                weight = Integer.parseInt(entry.getKey());
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Priority weight '" + entry.getKey() + "' is not a whole number.");
+            }
+            String name = entry.getValue().toString();
+            priorities.add(new Priority(name, weight));
+        });
+        // An empty table would leave the queue without any sub queues to put players in.
+        if (priorities.isEmpty())
+            throw new IllegalStateException("At least one priority has to be configured.");
+        // Kept in the order the table is read in, QueuedPlayer picks the first priority whose permission matches.
+        this.priorities = Collections.unmodifiableList(priorities);
+    }
+
+    /**
+     * Parses the given file into a new snapshot.
+     * @throws IllegalStateException if the file is not valid toml, or is missing or has invalid settings
+     */
+    @NotNull
+    public static QueueConfig read(@NotNull File file) {
+        return new QueueConfig(new Toml().read(file));
+    }
+
+    /**
+     * @return A fresh, sorted set of empty sub queues, one per configured priority.
+     */
+    @NotNull
+    public List<SubQueue> newSubQueues() {
+        List<SubQueue> subQueues = new ArrayList<>();
+        for (Priority priority : this.priorities)
+            subQueues.add(new SubQueue(priority.name(), priority.getWeight()));
+        Collections.sort(subQueues);
+        return subQueues;
+    }
+
+    private static String requireString(Toml config, String key) {
+        String value = config.getString(key);
+        if (value == null)
+            throw new IllegalStateException("config.toml is missing '" + key + "'.");
+        return value;
+    }
+
+    private static Toml requireTable(Toml config, String key) {
+        Toml table = config.getTable(key);
+        if (table == null)
+            throw new IllegalStateException("config.toml is missing the [" + key + "] table.");
+        return table;
+    }
+
+    public String connectTo() {
+        return connectTo;
+    }
+
+    public String toConnect() {
+        return toConnect;
+    }
+
+    public String queueMessage() {
+        return queueMessage;
+    }
+
+    public String positionMessage() {
+        return positionMessage;
+    }
+
+    public Duration timeBetweenUpdates() {
+        return timeBetweenUpdates;
+    }
+
+    public Duration timeBetweenMessages() {
+        return timeBetweenMessages;
+    }
+
+    /**
+     * @return How long a disconnected player's entry is held for them, zero if reservations are disabled.
+     */
+    public Duration reconnectGrace() {
+        return reconnectGrace;
+    }
+
+    public boolean watch() {
+        return watch;
+    }
+
+    public List<Priority> priorities() {
+        return priorities;
+    }
+
+}
@@ -0,0 +1,25 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.polar.instaqueue.Broadcast")
+@Label("Position Broadcast")
+@Description("Sending position messages to every player in a sub queue.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class BroadcastEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Sub Queue")
+    public String subQueue;
+
+    @Label("Recipients")
+    public int recipients;
+
+}
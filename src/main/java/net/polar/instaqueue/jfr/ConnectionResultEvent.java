@@ -0,0 +1,31 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Begun when the connection request is made and committed once it completes, so the event duration is the connect latency.
+ */
+@Name("net.polar.instaqueue.ConnectionResult")
+@Label("Connection Result")
+@Description("The result of sending a player to the queued server.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class ConnectionResultEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Player")
+    public String player;
+
+    @Label("Successful")
+    public boolean successful;
+
+    @Label("Status")
+    public String status;
+
+}
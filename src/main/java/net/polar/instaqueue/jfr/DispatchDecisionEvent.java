@@ -0,0 +1,32 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.polar.instaqueue.DispatchDecision")
+@Label("Dispatch Decision")
+@Description("The outcome of a dispatch tick, including why nobody was sent. Only recorded when the outcome changes or a player is dequeued.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class DispatchDecisionEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Sent")
+    public boolean sent;
+
+    @Label("Reason")
+    @Description("Why canSend returned false, or what happened to the polled player.")
+    public String reason;
+
+    @Label("Online Players")
+    public int online;
+
+    @Label("Max Players")
+    public int maxPlayers;
+
+}
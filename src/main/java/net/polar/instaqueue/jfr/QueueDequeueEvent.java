@@ -0,0 +1,29 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.polar.instaqueue.Dequeue")
+@Label("Queue Dequeue")
+@Description("A player left a queue, either by being sent or by being removed.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class QueueDequeueEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Player")
+    public String player;
+
+    @Label("Sub Queue")
+    public String subQueue;
+
+    @Label("Sent")
+    @Description("True if the player was taken from the head of the queue to be sent, false if they were removed.")
+    public boolean sent;
+
+}
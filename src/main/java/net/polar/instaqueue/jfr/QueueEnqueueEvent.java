@@ -0,0 +1,34 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.polar.instaqueue.Enqueue")
+@Label("Queue Enqueue")
+@Description("A player joined a queue.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class QueueEnqueueEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Player")
+    public String player;
+
+    @Label("Sub Queue")
+    public String subQueue;
+
+    @Label("Priority Weight")
+    public int weight;
+
+    @Label("Position")
+    public int position;
+
+    @Label("Sub Queue Size")
+    public int size;
+
+}
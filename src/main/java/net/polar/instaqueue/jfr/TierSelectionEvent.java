@@ -0,0 +1,28 @@
+package net.polar.instaqueue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.polar.instaqueue.TierSelection")
+@Label("Tier Selection")
+@Description("The sub queue chosen by the send ratio.")
+@Category("InstaQueue")
+@StackTrace(false)
+public class TierSelectionEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    public String queue;
+
+    @Label("Sub Queue")
+    public String subQueue;
+
+    @Label("Weight")
+    public int weight;
+
+    @Label("Sub Queue Size")
+    public int size;
+
+}
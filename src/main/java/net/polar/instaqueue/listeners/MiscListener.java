@@ -7,6 +7,10 @@ import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import com.velocitypowered.api.proxy.Player;
 import net.polar.instaqueue.InstaQueue;
 import net.polar.instaqueue.player.QueuedPlayer;
+import net.polar.instaqueue.types.Queue;
+
+import java.time.Duration;
+import java.time.Instant;
 
 public final class MiscListener {
 
@@ -34,6 +38,19 @@ public final class MiscListener {
     @Subscribe
     public void onPlayerLeave(DisconnectEvent event) {
         QueuedPlayer player = InstaQueue.getInstance().queued(event.getPlayer());
+        Duration grace = InstaQueue.getInstance().getConfig().reconnectGrace();
+        if (player != null && !grace.isZero() && player.isInQueue() && player.queue().suspend(player)) {
+            // Keep their entry and QueuedPlayer around, reconnecting in time resumes them in place.
+            final Queue queue = player.queue();
+            final Instant since = player.suspendedSince();
+            InstaQueue.getInstance().buildTask(() -> {
+                // They may have come back to the proxy without rejoining the hub, keep their QueuedPlayer if so.
+                if (queue.expire(player, since) && player.player() == null)
+                    InstaQueue.getInstance().removeQueued(player.uuid());
+            }).delay(grace).schedule();
+            return;
+        }
+
         if (player != null) {
             if (player.isInQueue()) player.queue().remove(player);
         }
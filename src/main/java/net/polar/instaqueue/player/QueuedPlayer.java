@@ -5,10 +5,13 @@ import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.audience.ForwardingAudience;
 import net.polar.instaqueue.InstaQueue;
 import net.polar.instaqueue.types.Queue;
+import net.polar.instaqueue.types.SubQueue;
 import net.polar.instaqueue.utils.Priority;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -19,6 +22,9 @@ public class QueuedPlayer implements ForwardingAudience.Single {
     private final String name;
     private Queue queue;
     private Priority priority;
+    private Instant queuedSince;
+    private volatile Instant suspendedSince;
+    private volatile SubQueue subQueue;
 
     public QueuedPlayer(@NotNull Player player) {
         this.uuid = player.getUniqueId();
@@ -66,19 +72,77 @@ public class QueuedPlayer implements ForwardingAudience.Single {
         this.queue = queue;
     }
 
+    /**
+     * @return When the player last joined a queue, or null if they never have.
+     */
+    @Nullable
+    public Instant queuedSince() {
+        return this.queuedSince;
+    }
+
+    public void queuedSince(Instant queuedSince) {
+        this.queuedSince = queuedSince;
+    }
+
+    /**
+     * @return The sub queue currently holding the player's entry, or null if they have none. Maintained by {@link SubQueue}.
+     */
+    @Nullable
+    public SubQueue subQueue() {
+        return this.subQueue;
+    }
+
+    public void subQueue(@Nullable SubQueue subQueue) {
+        this.subQueue = subQueue;
+    }
+
+    /**
+     * @return When the player disconnected while holding their place in the queue, or null if they are active.
+     */
+    @Nullable
+    public Instant suspendedSince() {
+        return this.suspendedSince;
+    }
+
+    public void suspendedSince(@Nullable Instant suspendedSince) {
+        this.suspendedSince = suspendedSince;
+    }
+
+    public boolean isSuspended() {
+        return this.suspendedSince != null;
+    }
+
+    /**
+     * Works out the player's priority under the given priorities without applying it.
+     * An offline player's permissions can't be checked, so they keep their current one.
+     */
+    @NotNull
+    public Priority priorityUnder(@NotNull List<Priority> priorities) {
+        if (player() == null) return priority();
+        return calculatePriority(priorities);
+    }
+
+    public void priority(@NotNull Priority priority) {
+        this.priority = priority;
+    }
+
     private @NotNull Priority calculatePriority() {
+        return calculatePriority(InstaQueue.getInstance().getPriorities());
+    }
+
+    private @NotNull Priority calculatePriority(List<Priority> priorities) {
         Player player = player();
         if (player == null) return NONE_PRIORITY;
 
-        for (Priority priority : InstaQueue.getInstance().getPriorities()) {
+        for (Priority priority : priorities) {
             if (player.hasPermission(priority.name().toLowerCase(Locale.ROOT))) return priority;
         }
         return NONE_PRIORITY;
     }
 
     public void recalculatePriority() {
-        // Recalculate the priority if it's set
-        if (this.priority != null) this.priority = calculatePriority();
+        // Recalculate the priority if it's set, an offline player's permissions can't be checked so keep theirs
+        if (this.priority != null && player() != null) this.priority = calculatePriority();
     }
 
     @Override
@@ -1,105 +1,204 @@
 package net.polar.instaqueue.types;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
+import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.polar.instaqueue.InstaQueue;
+import net.polar.instaqueue.config.QueueConfig;
+import net.polar.instaqueue.jfr.BroadcastEvent;
+import net.polar.instaqueue.jfr.ConnectionResultEvent;
+import net.polar.instaqueue.jfr.DispatchDecisionEvent;
+import net.polar.instaqueue.jfr.QueueDequeueEvent;
+import net.polar.instaqueue.jfr.QueueEnqueueEvent;
+import net.polar.instaqueue.jfr.TierSelectionEvent;
 import net.polar.instaqueue.player.QueuedPlayer;
+import net.polar.instaqueue.utils.Priority;
 import net.polar.instaqueue.utils.Ratio;
+import net.polar.instaqueue.utils.RememberedPositions;
+import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 import java.util.Vector;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Queue {
 
-    private final List<SubQueue> subQueues;
-    private final SubQueue regularQueue;
-    private final Ratio<SubQueue> subQueueRatio;
-    private final Cache<UUID, Integer> rememberedPlayers = CacheBuilder.newBuilder().expireAfterWrite(15, TimeUnit.MINUTES).build();
+    private volatile Layout layout;
+    private final RememberedPositions rememberedPlayers = new RememberedPositions(1 << 16, Duration.ofMinutes(15));
     private final RegisteredServer server;
     private final String formattedName;
     private final String name;
 
     private int maxPlayers;
     private Instant lastSendTime = Instant.EPOCH;
+    private final ConcurrentLinkedQueue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private volatile QueueSnapshot snapshot = QueueSnapshot.EMPTY;
+    private volatile boolean dirty = true;
 
     private boolean firstIter = true;
+    // The reason last recorded by recordDecision, so idle ticks don't repeat the same event.
+    private String lastDecision;
 
     public Queue(RegisteredServer server) {
         this.server = server;
         this.name = server.getServerInfo().getName();
         this.formattedName = server.getServerInfo().getName().substring(0, 1).toUpperCase() + server.getServerInfo().getName().substring(1);
         refreshMaxPlayers();
-        this.subQueues = InstaQueue.getInstance().newSubQueues();
-        this.subQueueRatio = new Ratio<>(subQueues);
-        this.regularQueue = getLastElement(subQueues);
+        this.layout = new Layout(InstaQueue.getInstance().newSubQueues());
     }
 
     public void sendNext() {
-        if (!canSend()) return;
+        applyPendingUpdates();
+        publishSnapshot();
+        String blocked = sendBlocker();
+        if (blocked != null) {
+            recordDecision(false, blocked);
+            return;
+        }
         if (firstIter) {
             firstIter = false;
+            recordDecision(false, "first iteration");
             InstaQueue.getInstance().buildTask(this::sendNext).delay(InstaQueue.getInstance().getTimeBetweenUpdates()).schedule();
             return;
         }
         // Gets the queue to send the next player from.
         SubQueue queue = getNextSubQueue(false);
-        QueuedPlayer toSend = queue.removePlayer(0);
+        QueuedPlayer toSend = queue.poll();
+        // The sub queue was emptied or migrated by a reload since canSend was checked.
+        if (toSend == null) {
+            recordDecision(false, "sub queue drained");
+            return;
+        }
+        dirty = true;
+        recordDequeue(toSend, queue, true);
+        // Always record what happens to a dequeued player, even if the last one went the same way.
+        lastDecision = null;
         toSend.queue(null);
         rememberPosition(toSend, 0);
         Player player = toSend.player();
 
         // The player is null or the player's connection is no longer active, return
-        if (player == null || !player.isActive())
+        if (player == null || !player.isActive()) {
+            recordDecision(false, "player offline");
             return;
+        }
 
         // Make sure the server the player is being sent to isn't the one they're currently on
-        if (player.getCurrentServer().map(server -> server.getServerInfo().getName()).orElse("unknown").equalsIgnoreCase(this.name))
+        if (player.getCurrentServer().map(server -> server.getServerInfo().getName()).orElse("unknown").equalsIgnoreCase(this.name)) {
+            recordDecision(false, "already connected");
             return;
+        }
 
-        player.sendMessage(Component.text("You are being sent to " + formattedName + "...", NamedTextColor.GREEN));
-
-        player.createConnectionRequest(server).connect().thenAccept(result -> {
-            if (result.isSuccessful()) {
-                player.sendMessage(Component.text("You have been sent to " + formattedName + ".", NamedTextColor.GREEN));
-                sendProgressMessages(queue);
-            } else {
-                player.sendMessage(Component.text("Unable to connect you to " + formattedName + ".", NamedTextColor.RED));
-                Component reason = switch (result.getStatus()) {
-                    case CONNECTION_IN_PROGRESS -> Component.text("You are already being connected to this server!", NamedTextColor.RED);
-                    case SERVER_DISCONNECTED -> result.getReasonComponent().isPresent() ? result.getReasonComponent().get() : Component.text("The target server has refused your connection.", NamedTextColor.RED);
-                    case ALREADY_CONNECTED -> Component.text("You are already connected to this server!", NamedTextColor.RED);
-                    case CONNECTION_CANCELLED -> Component.text("Your connection has been cancelled unexpectedly.", NamedTextColor.RED);
-                    default -> Component.text("", NamedTextColor.RED);
-                };
-
-                player.sendMessage(Component.text("Reason: ", reason.colorIfAbsent(NamedTextColor.RED).color()).append(reason));
+        recordDecision(true, "sent");
+        message(player, Component.text("You are being sent to " + formattedName + "...", NamedTextColor.GREEN));
+
+        ConnectionResultEvent connection = new ConnectionResultEvent();
+        connection.begin();
+        // Velocity may complete this on a netty event loop, so only hand the result off from here.
+        player.createConnectionRequest(server).connect().whenComplete((result, e) -> {
+            if (e != null) {
+                recordConnection(connection, toSend, false, e.getClass().getSimpleName());
+                pendingUpdates.add(() -> requeue(toSend));
+                InstaQueue.getInstance().getMessenger().execute(() -> {
+                    InstaQueue.getInstance().getLogger().error("Unable to send " + toSend.name() + " to " + name + ".", e);
+                    player.sendMessage(Component.text("Unable to connect you to " + formattedName + ".", NamedTextColor.RED));
+                    player.sendMessage(Component.text("Attempting to re-queue you...", NamedTextColor.RED));
+                });
+                return;
             }
-        }).exceptionally(e -> {
-            e.printStackTrace();
-            player.sendMessage(Component.text("Unable to connect you to " + formattedName + ".", NamedTextColor.RED));
-            player.sendMessage(Component.text("Attempting to re-queue you...", NamedTextColor.RED));
-            toSend.queue(this);
-            queue.addPlayer(toSend, 0);
-            return null;
+
+            recordConnection(connection, toSend, result.isSuccessful(), result.getStatus().name());
+            InstaQueue.getInstance().getMessenger().execute(() -> handleResult(player, result, queue));
         });
 
         lastSendTime = Instant.now();
     }
 
+    private void handleResult(Player player, ConnectionRequestBuilder.Result result, SubQueue queue) {
+        if (result.isSuccessful()) {
+            player.sendMessage(Component.text("You have been sent to " + formattedName + ".", NamedTextColor.GREEN));
+            sendProgressMessages(queue);
+            return;
+        }
+
+        player.sendMessage(Component.text("Unable to connect you to " + formattedName + ".", NamedTextColor.RED));
+        Component reason = switch (result.getStatus()) {
+            case CONNECTION_IN_PROGRESS -> Component.text("You are already being connected to this server!", NamedTextColor.RED);
+            case SERVER_DISCONNECTED -> result.getReasonComponent().isPresent() ? result.getReasonComponent().get() : Component.text("The target server has refused your connection.", NamedTextColor.RED);
+            case ALREADY_CONNECTED -> Component.text("You are already connected to this server!", NamedTextColor.RED);
+            case CONNECTION_CANCELLED -> Component.text("Your connection has been cancelled unexpectedly.", NamedTextColor.RED);
+            default -> Component.text("", NamedTextColor.RED);
+        };
+
+        player.sendMessage(Component.text("Reason: ", reason.colorIfAbsent(NamedTextColor.RED).color()).append(reason));
+    }
+
+    /**
+     * Runs the queue state updates posted by connection callbacks. Only called from the dispatch tick,
+     * so those updates never race with sending.
+     */
+    private void applyPendingUpdates() {
+        Runnable update;
+        while ((update = pendingUpdates.poll()) != null)
+            update.run();
+    }
+
+    /**
+     * Replaces the published snapshot if the queue changed since the last tick.
+     */
+    private void publishSnapshot() {
+        if (!dirty) return;
+
+        // Cleared before copying, so a change made while copying is picked up by the next tick.
+        dirty = false;
+        this.snapshot = QueueSnapshot.of(this.layout.subQueues);
+    }
+
+    /**
+     * @return The snapshot published by the last dispatch tick. Reading it never blocks dispatch.
+     */
+    public QueueSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sends a message from the messaging thread, so the caller never waits on it.
+     */
+    private void message(Audience audience, Component message) {
+        InstaQueue.getInstance().getMessenger().execute(() -> audience.sendMessage(message));
+    }
+
     public boolean canSend() {
-        return lastSendTime.plusSeconds(InstaQueue.getInstance().getTimeBetweenUpdates().toSeconds()).isBefore(Instant.now())
-                && server.getPlayersConnected().size() < maxPlayers
-                && hasPlayers()
-                && !getNextSubQueue(true).players().isEmpty();
+        return sendBlocker() == null;
+    }
+
+    /**
+     * @return Why the next player can't be sent yet, or null if they can be.
+     */
+    @Nullable
+    private String sendBlocker() {
+        if (!lastSendTime.plusSeconds(InstaQueue.getInstance().getTimeBetweenUpdates().toSeconds()).isBefore(Instant.now()))
+            return "update interval";
+        if (server.getPlayersConnected().size() >= maxPlayers)
+            return "server full";
+        if (!hasPlayers())
+            return "queue empty";
+        if (!getNextSubQueue(true).hasActivePlayers())
+            return "next sub queue empty";
+
+        return null;
     }
 
     public void sendProgressMessages(SubQueue queue) {
@@ -107,12 +206,22 @@ public class Queue {
 
         queue.lastPositionMessageTime(Instant.now());
 
-        for (QueuedPlayer player : queue.players()) {
-            rememberPosition(player);
-            String pos = InstaQueue.getInstance().getConfig().getString("position-message")
-                            .replace("%queue%", formattedName)
-                            .replace("%position%", String.valueOf(player.position() + 1));
-            player.sendMessage(MiniMessage.miniMessage().deserialize(pos));
+        BroadcastEvent broadcast = new BroadcastEvent();
+        broadcast.begin();
+        // Copy once and use the index as the position, looking each player up again made this O(n^2).
+        QueuedPlayer[] players = queue.players().toArray(new QueuedPlayer[0]);
+        String message = InstaQueue.getInstance().getConfig().positionMessage().replace("%queue%", formattedName);
+        for (int i = 0; i < players.length; i++) {
+            rememberPosition(players[i], i);
+            if (players[i].isSuspended()) continue;
+            players[i].sendMessage(MiniMessage.miniMessage().deserialize(message.replace("%position%", String.valueOf(i + 1))));
+        }
+        broadcast.end();
+        if (broadcast.shouldCommit()) {
+            broadcast.queue = name;
+            broadcast.subQueue = queue.name();
+            broadcast.recipients = players.length;
+            broadcast.commit();
         }
     }
 
@@ -124,64 +233,144 @@ public class Queue {
         rememberedPlayers.put(player.uuid(), index);
     }
 
-    public void enqueue(QueuedPlayer player) {
+    public synchronized void enqueue(QueuedPlayer player) {
         if (player.queue() != null) {
             if (player.queue().equals(this)) {
-                player.sendMessage(Component.text("You are already queued for this server.", NamedTextColor.RED));
+                if (resume(player))
+                    message(player, Component.text("Welcome back, you have kept your place in the queue for " + formattedName + ".", NamedTextColor.GREEN));
+                else
+                    message(player, Component.text("You are already queued for this server.", NamedTextColor.RED));
                 return;
             } else {
-                player.sendMessage(Component.text("You have been removed from the queue for " + player.queue().getServerFormatted() + ".", NamedTextColor.RED));
+                message(player, Component.text("You have been removed from the queue for " + player.queue().getServerFormatted() + ".", NamedTextColor.RED));
                 player.queue().remove(player);
             }
         }
 
         SubQueue subQueue = getSubQueue(player);
         player.queue(this);
+        player.queuedSince(Instant.now());
+
+        int index = subQueue.insert(player, rememberedPlayers.get(player.uuid(), Integer.MAX_VALUE));
+        dirty = true;
+
+        QueueEnqueueEvent event = new QueueEnqueueEvent();
+        if (event.isEnabled()) {
+            event.queue = name;
+            event.player = player.name();
+            event.subQueue = subQueue.name();
+            event.weight = player.priority().getWeight();
+            event.position = index;
+            event.size = subQueue.players().size();
+            event.commit();
+        }
 
-        int index = insertionIndex(player, subQueue);
-        if (index < 0 || index >= subQueue.players().size()) subQueue.addPlayer(player);
-        else subQueue.addPlayer(player, index);
-
-        String joining = InstaQueue.getInstance().getConfig().getString("queue-message")
+        String joining = InstaQueue.getInstance().getConfig().queueMessage()
                         .replace("%queue%", formattedName)
                         .replace("%size%", String.valueOf(subQueue.players().size()))
-                        .replace("%position%", String.valueOf(player.position() + 1));
-        player.sendMessage(MiniMessage.miniMessage().deserialize(joining));
+                        .replace("%position%", String.valueOf(index + 1));
+        message(player, MiniMessage.miniMessage().deserialize(joining));
     }
 
-    public int insertionIndex(QueuedPlayer player, SubQueue subQueue) {
-        if (subQueue.players().isEmpty())
-            return 0;
+    public synchronized void remove(QueuedPlayer player) {
+        rememberPosition(player);
+        player.queue(null);
 
-        int rememberedPosition = subQueue.players().size();
-        if (rememberedPlayers.getIfPresent(player.uuid()) != null)
-            rememberedPosition = Math.min(rememberedPlayers.getIfPresent(player.uuid()), subQueue.players().size());
+        for (SubQueue subQueue : this.layout.subQueues)
+            if (subQueue.removePlayer(player))
+                recordDequeue(player, subQueue, false);
+        // Cleared after removing, so the sub queue still counts them as suspended while they're taken out.
+        player.suspendedSince(null);
+        dirty = true;
+    }
 
-        int weight = player.priority().getWeight();
-        if (weight == 0)
-            return rememberedPosition;
+    /**
+     * Holds a disconnecting player's entry in place. Dispatch steps over it until they are resumed or expired.
+     * @return False if the player isn't queued here or is already suspended.
+     */
+    public synchronized boolean suspend(QueuedPlayer player) {
+        SubQueue subQueue = player.subQueue();
+        if (!this.equals(player.queue()) || subQueue == null)
+            return false;
 
-        int slot = 0;
-        for (int i = 0; i < subQueue.players().size(); i++) {
-            if (weight <= subQueue.getPlayer(i).priority().getWeight())
-                slot = i+1;
-        }
+        if (!subQueue.suspend(player, Instant.now()))
+            return false;
 
-        int priorityIndex = Math.min(slot, subQueue.players().size());
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Reactivates a suspended player where they stood.
+     * @return False if the player wasn't suspended.
+     */
+    public synchronized boolean resume(QueuedPlayer player) {
+        SubQueue subQueue = player.subQueue();
+        if (subQueue == null || !subQueue.resume(player))
+            return false;
 
-        return Math.min(rememberedPosition, priorityIndex);
+        dirty = true;
+        return true;
     }
 
-    public void remove(QueuedPlayer player) {
-        rememberPosition(player);
-        player.queue(null);
+    /**
+     * Removes a suspended player whose grace period ran out.
+     * @param since The suspension being expired, so a later suspension of the same player is left alone.
+     * @return True if the player was removed.
+     */
+    public synchronized boolean expire(QueuedPlayer player, Instant since) {
+        if (!since.equals(player.suspendedSince()))
+            return false;
+
+        remove(player);
+        return true;
+    }
 
-        for (SubQueue subQueue : this.subQueues)
-            subQueue.removePlayer(player);
+    /**
+     * Puts a player back at the front of their weight in their sub queue, used when sending them fails.
+     */
+    public synchronized void requeue(QueuedPlayer player) {
+        player.queue(this);
+        getSubQueue(player).insert(player, 0);
+        dirty = true;
+    }
+
+    /**
+     * Swaps in a sub queue layout built from the given config, moving every queued player into the tier matching
+     * their priority under it. Players keep their relative order. Everything that can fail runs before the current
+     * sub queues are emptied, so a failed reload leaves the queue untouched. Dispatch does not take this lock, it
+     * simply starts polling the new layout once it has been published.
+     */
+    public synchronized void reload(QueueConfig config) {
+        Layout previous = this.layout;
+        Layout next = new Layout(config.newSubQueues());
+
+        // Priorities are cached per player, work out the new ones up front since this runs the permission checks.
+        Map<QueuedPlayer, Priority> priorities = new IdentityHashMap<>();
+        for (SubQueue subQueue : previous.subQueues)
+            for (QueuedPlayer player : subQueue.players().toArray(new QueuedPlayer[0]))
+                priorities.put(player, player.priorityUnder(config.priorities()));
+
+        Map<SubQueue, List<QueuedPlayer>> migrated = new HashMap<>();
+        for (SubQueue subQueue : previous.subQueues) {
+            for (QueuedPlayer player : subQueue.drain()) {
+                player.priority(priorities.getOrDefault(player, player.priority()));
+                migrated.computeIfAbsent(next.subQueueFor(player), k -> new ArrayList<>()).add(player);
+            }
+        }
+        migrated.forEach((subQueue, players) -> {
+            // Recalculated priorities can differ within a tier, a stable sort restores the weight order.
+            players.sort(Comparator.comparing(QueuedPlayer::priority));
+            subQueue.addPlayers(players);
+        });
+
+        // Only published once filled. hasPlayer takes this lock, so nobody sees the players missing in between.
+        this.layout = next;
+        dirty = true;
     }
 
-    public boolean hasPlayer(QueuedPlayer player) {
-        for (SubQueue subQueue : this.subQueues)
+    public synchronized boolean hasPlayer(QueuedPlayer player) {
+        for (SubQueue subQueue : this.layout.subQueues)
             if (subQueue.hasPlayer(player))
                 return true;
 
@@ -189,7 +378,7 @@ public class Queue {
     }
 
     public boolean hasPlayers() {
-        for (SubQueue subQueue : this.subQueues)
+        for (SubQueue subQueue : this.layout.subQueues)
             if (!subQueue.players().isEmpty())
                 return true;
 
@@ -218,16 +407,24 @@ public class Queue {
      * @return The queue to send the next player from.
      */
     public SubQueue getNextSubQueue(boolean dry) {
-        return this.subQueueRatio.next(dry, (subQueue) -> !subQueue.players().isEmpty(), regularQueue);
+        Layout layout = this.layout;
+        SubQueue next = layout.ratio.next(dry, SubQueue::hasActivePlayers, layout.regularQueue);
+
+        if (!dry) {
+            TierSelectionEvent event = new TierSelectionEvent();
+            if (event.isEnabled()) {
+                event.queue = name;
+                event.subQueue = next.name();
+                event.weight = next.getWeight();
+                event.size = next.players().size();
+                event.commit();
+            }
+        }
+        return next;
     }
 
     public SubQueue getSubQueue(QueuedPlayer player) {
-        for (SubQueue subQueue : this.subQueues)
-            if (player.priority().getWeight() >= subQueue.getWeight())
-                return subQueue;
-
-        // Fallback to the regular queue if none is found.
-        return regularQueue;
+        return this.layout.subQueueFor(player);
     }
 
     public RegisteredServer getServer() {
@@ -239,19 +436,62 @@ public class Queue {
     }
 
 
+    /**
+     * Copies every sub queue under its lock. Prefer {@link #snapshot()} for anything that doesn't need live players.
+     */
     public Vector<QueuedPlayer> allPlayers() {
         Vector<QueuedPlayer> allPlayers = new Vector<>();
-        for (SubQueue subQueue : subQueues)
+        for (SubQueue subQueue : this.layout.subQueues)
             allPlayers.addAll(subQueue.players());
 
         return allPlayers;
     }
 
     public SubQueue getRegularQueue() {
-        return this.regularQueue;
+        return this.layout.regularQueue;
+    }
+
+    // The events below are only populated when a flight recording has them enabled, so they cost nothing otherwise.
+
+    private void recordDecision(boolean sent, String reason) {
+        boolean changed = !reason.equals(lastDecision);
+        lastDecision = reason;
+        if (!changed) return;
+
+        DispatchDecisionEvent event = new DispatchDecisionEvent();
+        if (!event.isEnabled()) return;
+
+        event.queue = name;
+        event.sent = sent;
+        event.reason = reason;
+        event.online = server.getPlayersConnected().size();
+        event.maxPlayers = maxPlayers;
+        event.commit();
+    }
+
+    private void recordDequeue(QueuedPlayer player, SubQueue subQueue, boolean sent) {
+        QueueDequeueEvent event = new QueueDequeueEvent();
+        if (!event.isEnabled()) return;
+
+        event.queue = name;
+        event.player = player.name();
+        event.subQueue = subQueue.name();
+        event.sent = sent;
+        event.commit();
     }
 
-    private SubQueue getLastElement(Collection<SubQueue> collection) {
+    private void recordConnection(ConnectionResultEvent event, QueuedPlayer player, boolean successful, String status) {
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.queue = name;
+        event.player = player.name();
+        event.successful = successful;
+        event.status = status;
+        event.commit();
+    }
+
+    private static SubQueue getLastElement(Collection<SubQueue> collection) {
         SubQueue current = null;
 
         for (SubQueue subQueue : collection)
@@ -260,4 +500,31 @@ public class Queue {
         return current;
     }
 
+    /**
+     * The sub queues and send ratio built from one config snapshot, replaced as a whole on reload.
+     */
+    private static final class Layout {
+        private final List<SubQueue> subQueues;
+        private final SubQueue regularQueue;
+        private final Ratio<SubQueue> ratio;
+
+        private Layout(List<SubQueue> subQueues) {
+            if (subQueues.isEmpty())
+                throw new IllegalStateException("A queue needs at least one sub queue.");
+
+            this.subQueues = subQueues;
+            this.regularQueue = getLastElement(subQueues);
+            this.ratio = new Ratio<>(subQueues);
+        }
+
+        private SubQueue subQueueFor(QueuedPlayer player) {
+            for (SubQueue subQueue : this.subQueues)
+                if (player.priority().getWeight() >= subQueue.getWeight())
+                    return subQueue;
+
+            // Fallback to the regular queue if none is found.
+            return regularQueue;
+        }
+    }
+
 }
@@ -0,0 +1,167 @@
+package net.polar.instaqueue.types;
+
+import net.polar.instaqueue.player.QueuedPlayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable, point in time copy of a {@link Queue}. Snapshots are published by the dispatch tick,
+ * so commands, metrics and placeholders can read them without locking anything dispatch uses.
+ */
+public final class QueueSnapshot {
+
+    public static final QueueSnapshot EMPTY = new QueueSnapshot(new Entry[0], Collections.emptyMap(), null, Instant.EPOCH);
+
+    private final Entry[] entries;
+    private final Map<String, Integer> tierSizes;
+    private final Instant headSince;
+    private final Instant publishedAt;
+
+    private QueueSnapshot(Entry[] entries, Map<String, Integer> tierSizes, @Nullable Instant headSince, Instant publishedAt) {
+        this.entries = entries;
+        this.tierSizes = tierSizes;
+        this.headSince = headSince;
+        this.publishedAt = publishedAt;
+    }
+
+    /**
+     * Copies the given sub queues. Each sub queue is copied atomically, the snapshot as a whole is not.
+     */
+    @NotNull
+    static QueueSnapshot of(@NotNull List<SubQueue> subQueues) {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Integer> tierSizes = new LinkedHashMap<>();
+        Instant headSince = null;
+
+        for (SubQueue subQueue : subQueues) {
+            QueuedPlayer[] players = subQueue.players().toArray(new QueuedPlayer[0]);
+            tierSizes.put(subQueue.name(), players.length);
+
+            for (int i = 0; i < players.length; i++) {
+                QueuedPlayer player = players[i];
+                Entry entry = new Entry(player.uuid(), player.name(), subQueue.name(), player.priority().getWeight(), i, player.queuedSince(), player.isSuspended());
+                entries.add(entry);
+                if (i == 0 && entry.queuedSince != null && (headSince == null || entry.queuedSince.isBefore(headSince)))
+                    headSince = entry.queuedSince;
+            }
+        }
+
+        return new QueueSnapshot(entries.toArray(new Entry[0]), Collections.unmodifiableMap(tierSizes), headSince, Instant.now());
+    }
+
+    /**
+     * @return Every queued player, ordered by sub queue (highest weight first) and then by position.
+     */
+    @NotNull
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    /**
+     * @param page The zero based page to read.
+     * @param pageSize The number of entries per page.
+     * @return The entries on the given page, or an empty list if it is out of range.
+     */
+    @NotNull
+    public List<Entry> page(int page, int pageSize) {
+        int from = page * pageSize;
+        if (page < 0 || from >= entries.length)
+            return Collections.emptyList();
+
+        return Collections.unmodifiableList(Arrays.asList(entries).subList(from, Math.min(from + pageSize, entries.length)));
+    }
+
+    public int pages(int pageSize) {
+        return (entries.length + pageSize - 1) / pageSize;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return The number of players in each sub queue, keyed by sub queue name in weight order.
+     */
+    @NotNull
+    public Map<String, Integer> tierSizes() {
+        return tierSizes;
+    }
+
+    /**
+     * @return How long the longest waiting player at the head of a sub queue has been queued for.
+     */
+    @NotNull
+    public Duration headWait() {
+        return headSince == null ? Duration.ZERO : Duration.between(headSince, Instant.now());
+    }
+
+    public Instant publishedAt() {
+        return publishedAt;
+    }
+
+    public static final class Entry {
+        private final UUID uuid;
+        private final String name;
+        private final String subQueue;
+        private final int weight;
+        private final int position;
+        private final Instant queuedSince;
+        private final boolean suspended;
+
+        private Entry(UUID uuid, String name, String subQueue, int weight, int position, @Nullable Instant queuedSince, boolean suspended) {
+            this.uuid = uuid;
+            this.name = name;
+            this.subQueue = subQueue;
+            this.weight = weight;
+            this.position = position;
+            this.queuedSince = queuedSince;
+            this.suspended = suspended;
+        }
+
+        public UUID uuid() {
+            return uuid;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String subQueue() {
+            return subQueue;
+        }
+
+        public int weight() {
+            return weight;
+        }
+
+        /**
+         * @return The zero based position within the entry's sub queue.
+         */
+        public int position() {
+            return position;
+        }
+
+        @Nullable
+        public Instant queuedSince() {
+            return queuedSince;
+        }
+
+        /**
+         * @return True if the player disconnected and is holding their place during the reconnect grace period.
+         */
+        public boolean suspended() {
+            return suspended;
+        }
+    }
+
+}
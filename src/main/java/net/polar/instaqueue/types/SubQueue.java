@@ -3,14 +3,24 @@ package net.polar.instaqueue.types;
 import net.polar.instaqueue.player.QueuedPlayer;
 import net.polar.instaqueue.utils.Weighted;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
 public class SubQueue extends Weighted {
 
     private final String name;
     private final Vector<QueuedPlayer> players = new Vector<>(0);
+    private final List<QueuedPlayer> playersView = Collections.unmodifiableList(players);
+    // The priority weight of each player at the same index in players, guarded by the players monitor.
+    private int[] weights = new int[16];
+    // The number of suspended players, guarded by the players monitor.
+    private int suspended;
     private Instant lastPositionMessageTime = Instant.EPOCH;
     private static final int maxSends = 1;
 
@@ -19,8 +29,11 @@ public class SubQueue extends Weighted {
         this.name = name;
     }
 
-    public Vector<QueuedPlayer> players() {
-        return this.players;
+    /**
+     * @return A read only view of the players in this sub queue, changes go through this class so the stored weights stay in sync.
+     */
+    public List<QueuedPlayer> players() {
+        return this.playersView;
     }
 
     public boolean hasPlayer(@NotNull QueuedPlayer player) {
@@ -28,23 +41,163 @@ public class SubQueue extends Weighted {
     }
 
     public void addPlayer(@NotNull QueuedPlayer player) {
-        players.add(player);
+        synchronized (players) {
+            addPlayer(player, players.size());
+        }
+    }
+
+    public void addPlayers(@NotNull List<QueuedPlayer> players) {
+        synchronized (this.players) {
+            for (QueuedPlayer player : players)
+                addPlayer(player, this.players.size());
+        }
     }
 
     public int getMaxSends() {
         return maxSends;
     }
 
+    /**
+     * Inserts a player, clamping the index to the current size in case players were sent since it was calculated.
+     */
     public void addPlayer(@NotNull QueuedPlayer player, int index) {
-        players.add(index, player);
+        int weight = player.priority().getWeight();
+        synchronized (players) {
+            int size = players.size();
+            index = Math.max(0, Math.min(index, size));
+            if (size == weights.length)
+                weights = Arrays.copyOf(weights, size * 2);
+
+            System.arraycopy(weights, index, weights, index + 1, size - index);
+            weights[index] = weight;
+            players.add(index, player);
+            player.subQueue(this);
+            if (player.isSuspended()) suspended++;
+        }
     }
 
-    public void removePlayer(@NotNull QueuedPlayer player) {
-        players.remove(player);
+    public boolean removePlayer(@NotNull QueuedPlayer player) {
+        synchronized (players) {
+            int index = players.indexOf(player);
+            if (index < 0) return false;
+
+            removePlayer(index);
+            return true;
+        }
     }
 
     public QueuedPlayer removePlayer(int index) {
-        return players.remove(index);
+        synchronized (players) {
+            QueuedPlayer removed = players.remove(index);
+            System.arraycopy(weights, index + 1, weights, index, players.size() - index);
+            removed.subQueue(null);
+            if (removed.isSuspended()) suspended--;
+            return removed;
+        }
+    }
+
+    /**
+     * Inserts a player at their remembered position, clamped to the band of players sharing their weight so this
+     * sub queue stays ordered from highest to lowest weight. Finding the slot is a binary search, the insert itself
+     * still shifts the entries behind it.
+     * @param rememberedPosition Where the player would like to be, anything past the end means the back of their band.
+     * @return The index the player was inserted at.
+     */
+    public int insert(@NotNull QueuedPlayer player, int rememberedPosition) {
+        int weight = player.priority().getWeight();
+        synchronized (players) {
+            int index = Math.max(insertionIndex(weight + 1), Math.min(rememberedPosition, insertionIndex(weight)));
+            addPlayer(player, index);
+            return index;
+        }
+    }
+
+    /**
+     * Binary searches the stored weights, relying on this sub queue being ordered from highest to lowest weight.
+     * @return The index after the last player whose weight is at least the given weight.
+     */
+    public int insertionIndex(int weight) {
+        synchronized (players) {
+            int low = 0;
+            int high = players.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (weights[mid] >= weight) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Removes and returns the first player in this sub queue who isn't suspended.
+     * Suspended players keep their place and are only stepped over, which costs nothing while there are none.
+     * @return The removed player, or null if there are no active players.
+     */
+    @Nullable
+    public QueuedPlayer poll() {
+        synchronized (players) {
+            if (players.size() == suspended) return null;
+
+            for (int i = 0; i < players.size(); i++)
+                if (!players.get(i).isSuspended())
+                    return removePlayer(i);
+
+            return null;
+        }
+    }
+
+    /**
+     * Marks a player in this sub queue as suspended, keeping their entry in place.
+     * @return False if they aren't in this sub queue or were already suspended.
+     */
+    public boolean suspend(@NotNull QueuedPlayer player, @NotNull Instant since) {
+        synchronized (players) {
+            if (player.subQueue() != this || player.isSuspended()) return false;
+
+            player.suspendedSince(since);
+            suspended++;
+            return true;
+        }
+    }
+
+    /**
+     * Reactivates a suspended player in this sub queue, without having to find their entry.
+     * @return False if they aren't in this sub queue or weren't suspended.
+     */
+    public boolean resume(@NotNull QueuedPlayer player) {
+        synchronized (players) {
+            if (player.subQueue() != this || !player.isSuspended()) return false;
+
+            player.suspendedSince(null);
+            suspended--;
+            return true;
+        }
+    }
+
+    /**
+     * @return True if this sub queue has anyone who can be sent.
+     */
+    public boolean hasActivePlayers() {
+        synchronized (players) {
+            return players.size() > suspended;
+        }
+    }
+
+    /**
+     * Atomically removes every player from this sub queue.
+     * @return The removed players, in queue order.
+     */
+    @NotNull
+    public List<QueuedPlayer> drain() {
+        synchronized (players) {
+            List<QueuedPlayer> drained = new ArrayList<>(players);
+            players.clear();
+            suspended = 0;
+            for (QueuedPlayer player : drained)
+                player.subQueue(null);
+            return drained;
+        }
     }
 
     @NotNull
@@ -72,7 +225,8 @@ public class SubQueue extends Weighted {
     public String toString() {
         return "SubQueue{" +
                 "name='" + name + '\'' +
-                ", players=" + players +
+                ", size=" + players.size() +
+                ", suspended=" + suspended +
                 ", lastPositionMessageTime=" + lastPositionMessageTime +
                 ", maxSends=" + maxSends +
                 ", weight=" + getWeight() +
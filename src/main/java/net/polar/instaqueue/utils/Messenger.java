@@ -0,0 +1,60 @@
+package net.polar.instaqueue.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, single threaded executor for outbound queue messaging and connection result handling.
+ * Submitting never blocks: once the backlog is full, new tasks are dropped and counted instead.
+ * Using one worker keeps the messages each player receives in order.
+ */
+public final class Messenger implements AutoCloseable {
+
+    private static final int CAPACITY = 1024;
+
+    private final Logger logger;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public Messenger(@NotNull Logger logger) {
+        this.logger = logger;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "InstaQueue Messenger");
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> {
+            // Tasks submitted while shutting down are expected to be discarded, they aren't backlog drops.
+            if (executor.isShutdown()) return;
+            if (dropped.getAndIncrement() % CAPACITY == 0)
+                logger.warn("Messenger backlog is full, dropped " + dropped.get() + " messaging tasks so far.");
+        });
+    }
+
+    public void execute(@NotNull Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Error while running a messaging task.", e);
+            }
+        });
+    }
+
+    /**
+     * @return The number of tasks dropped because the backlog was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,120 @@
+package net.polar.instaqueue.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed size store of the last known queue position per player.
+ * <p>
+ * Keys are kept as the two halves of the UUID and positions as plain ints, all in preallocated arrays, so memory
+ * stays flat no matter how many players pass through. Each key hashes to a set of {@link #WAYS} slots, when a set is
+ * full its slots are overwritten in turn, so the oldest insert is replaced. Entries expire in whole time buckets rather than per entry.
+ */
+public final class RememberedPositions {
+
+    private static final int WAYS = 8;
+    private static final int BUCKETS = 16;
+
+    private final LongSupplier clock;
+    private final long epoch;
+    private final long bucketMillis;
+    private final int setMask;
+    private final long[] mostSigBits;
+    private final long[] leastSigBits;
+    private final int[] positions;
+    // The bucket an entry was written in plus one, 0 marks an empty slot.
+    private final int[] stamps;
+    // The slot each set overwrites next once it is full.
+    private final byte[] victims;
+
+    /**
+     * @param capacity The maximum number of positions to remember, rounded up to a power of two.
+     * @param expiry How long a position is remembered for, to within one bucket.
+     */
+    public RememberedPositions(int capacity, @NotNull Duration expiry) {
+        this(capacity, expiry, System::currentTimeMillis);
+    }
+
+    RememberedPositions(int capacity, @NotNull Duration expiry, @NotNull LongSupplier clock) {
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+        int needed = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        int sets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.setMask = sets - 1;
+        this.bucketMillis = Math.max(1, expiry.toMillis() / BUCKETS);
+        this.mostSigBits = new long[sets * WAYS];
+        this.leastSigBits = new long[sets * WAYS];
+        this.positions = new int[sets * WAYS];
+        this.stamps = new int[sets * WAYS];
+        this.victims = new byte[sets];
+    }
+
+    public synchronized void put(@NotNull UUID uuid, int position) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int stamp = currentStamp();
+        final int set = setOf(most, least);
+        final int base = set * WAYS;
+
+        int target = -1;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (stamps[slot] != 0 && mostSigBits[slot] == most && leastSigBits[slot] == least) {
+                target = slot;
+                break;
+            }
+            if (target < 0 && !isLive(slot, stamp))
+                target = slot;
+        }
+        if (target < 0) {
+            target = base + victims[set];
+            victims[set] = (byte) ((victims[set] + 1) % WAYS);
+        }
+
+        mostSigBits[target] = most;
+        leastSigBits[target] = least;
+        positions[target] = position;
+        stamps[target] = stamp;
+    }
+
+    /**
+     * @return The remembered position, or the fallback if there is none or it has expired.
+     */
+    public synchronized int get(@NotNull UUID uuid, int fallback) {
+        final int slot = find(uuid);
+        return slot < 0 ? fallback : positions[slot];
+    }
+
+    private int find(UUID uuid) {
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int stamp = currentStamp();
+        final int base = setOf(most, least) * WAYS;
+
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (mostSigBits[slot] == most && leastSigBits[slot] == least && isLive(slot, stamp))
+                return slot;
+        }
+        return -1;
+    }
+
+    private boolean isLive(int slot, int stamp) {
+        return stamps[slot] != 0 && stamp - stamps[slot] < BUCKETS;
+    }
+
+    private int currentStamp() {
+        return (int) ((clock.getAsLong() - epoch) / bucketMillis) + 1;
+    }
+
+    private int setOf(long most, long least) {
+        // Murmur3 finalizer, so every bit of the key has a say in which set it lands in.
+        long hash = most ^ least;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & setMask;
+    }
+
+}
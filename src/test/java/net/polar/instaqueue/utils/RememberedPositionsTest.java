@@ -0,0 +1,102 @@
+package net.polar.instaqueue.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RememberedPositionsTest {
+
+    // 16 buckets of 10ms each.
+    private static final Duration EXPIRY = Duration.ofMillis(160);
+    private static final long BUCKET_MILLIS = 10;
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    public void testPutAndGet() {
+        RememberedPositions positions = new RememberedPositions(64, EXPIRY, now::get);
+        UUID uuid = UUID.randomUUID();
+
+        assertEquals(-1, positions.get(uuid, -1));
+        positions.put(uuid, 42);
+        assertEquals(42, positions.get(uuid, -1));
+        assertEquals(-1, positions.get(UUID.randomUUID(), -1));
+    }
+
+    @Test
+    public void testOverwriteReusesSlot() {
+        // A capacity of 8 is a single set of 8 slots, so every key competes for the same slots.
+        RememberedPositions positions = new RememberedPositions(8, EXPIRY, now::get);
+        UUID first = UUID.randomUUID();
+        positions.put(first, 1);
+        positions.put(first, 2);
+        assertEquals(2, positions.get(first, -1));
+
+        // If the overwrite had taken a second slot, one of these would evict an entry.
+        List<UUID> others = fill(positions, 7);
+        assertEquals(2, positions.get(first, -1));
+        for (int i = 0; i < others.size(); i++)
+            assertEquals(i, positions.get(others.get(i), -1));
+    }
+
+    @Test
+    public void testEvictsOldestInsertWhenSetIsFull() {
+        RememberedPositions positions = new RememberedPositions(8, EXPIRY, now::get);
+        List<UUID> uuids = fill(positions, 8);
+
+        UUID extra = UUID.randomUUID();
+        positions.put(extra, 100);
+
+        assertEquals(100, positions.get(extra, -1));
+        assertEquals(-1, positions.get(uuids.get(0), -1));
+        for (int i = 1; i < uuids.size(); i++)
+            assertEquals(i, positions.get(uuids.get(i), -1));
+
+        // The next insert evicts the next oldest.
+        positions.put(UUID.randomUUID(), 101);
+        assertEquals(-1, positions.get(uuids.get(1), -1));
+        assertEquals(2, positions.get(uuids.get(2), -1));
+    }
+
+    @Test
+    public void testExpiresAfterAllBuckets() {
+        RememberedPositions positions = new RememberedPositions(64, EXPIRY, now::get);
+        UUID uuid = UUID.randomUUID();
+        positions.put(uuid, 7);
+
+        now.addAndGet(15 * BUCKET_MILLIS);
+        assertEquals(7, positions.get(uuid, -1));
+
+        now.addAndGet(BUCKET_MILLIS);
+        assertEquals(-1, positions.get(uuid, -1));
+    }
+
+    @Test
+    public void testExpiredSlotsAreReusedBeforeEvicting() {
+        RememberedPositions positions = new RememberedPositions(8, EXPIRY, now::get);
+        fill(positions, 7);
+        now.addAndGet(16 * BUCKET_MILLIS);
+
+        // Only one slot was never used, the rest have expired, so none of these evict each other.
+        List<UUID> fresh = fill(positions, 8);
+        for (int i = 0; i < fresh.size(); i++)
+            assertEquals(i, positions.get(fresh.get(i), -1));
+    }
+
+    private static List<UUID> fill(RememberedPositions positions, int count) {
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID uuid = UUID.randomUUID();
+            positions.put(uuid, i);
+            uuids.add(uuid);
+        }
+        return uuids;
+    }
+
+}